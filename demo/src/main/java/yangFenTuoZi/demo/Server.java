@@ -27,6 +27,7 @@ public class Server extends ServerTemplate {
         builder.enableLogger = true;
         builder.logDir = new File("/sdcard/logs");
         builder.uids = new int[]{0};
+        builder.logStreamName = TAG + "_log";
         new Server(builder.build());
     }
 
@@ -0,0 +1,237 @@
+package yangFenTuoZi.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 日志限流器，按日志级别配置<br/><br/>
+ * 支持按格式化字符串的令牌桶限流、1/N采样以及连续重复日志的抑制，
+ * 未配置的级别只需一次数组访问即可放行<br/>
+ * <b>注意：</b>请在交给<code>Logger.setLimiter(LogLimiter)</code>之前完成配置
+ */
+public class LogLimiter {
+    /**
+     * 每个级别最多单独计数的格式化字符串数量，超出后新的格式化字符串共用同一份状态
+     */
+    private static final int MAX_KEYS = 1024;
+    private static final int LEVELS = 5;
+    /**
+     * 默认的汇总间隔（毫秒）
+     */
+    public static final long DEFAULT_SUMMARY_INTERVAL_MS = 5000;
+
+    /**
+     * 被抑制日志的汇总回调
+     */
+    public interface SummaryConsumer {
+        /**
+         * @param priority 日志级别
+         * @param key      被丢弃的格式化字符串，为null表示共用溢出状态的日志
+         * @param count    被丢弃的条数
+         */
+        void accept(String priority, String key, long count);
+    }
+
+    /**
+     * 单个键的限流状态：采样计数与令牌桶
+     */
+    private static class Bucket {
+        private final Rule rule;
+        private double tokens;
+        private long lastRefill;
+        private long sampled;    // 采样计数
+        private long suppressed; // 自上次汇总以来被采样或限流丢弃的条数
+        private final boolean reportOnGrant; // 放行时是否返回并清零被丢弃的条数
+
+        Bucket(Rule rule, boolean reportOnGrant) {
+            this.rule = rule;
+            this.reportOnGrant = reportOnGrant;
+            this.tokens = rule.burst;
+            this.lastRefill = System.nanoTime();
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(rule.burst, tokens + (now - lastRefill) * rule.perSecond / 1_000_000_000d);
+            lastRefill = now;
+        }
+
+        synchronized long acquire() {
+            int every = rule.sampleEvery;
+            if (every > 1 && sampled++ % every != 0) {
+                suppressed++;
+                return -1;
+            }
+            if (rule.perSecond > 0) {
+                refill();
+                if (tokens < 1) {
+                    suppressed++;
+                    return -1;
+                }
+                tokens -= 1;
+            }
+            if (!reportOnGrant) return 0;
+            long n = suppressed;
+            suppressed = 0;
+            return n;
+        }
+
+        synchronized long takeSuppressed() {
+            long n = suppressed;
+            suppressed = 0;
+            return n;
+        }
+
+        /**
+         * 令牌已回满且没有待汇总的条数，说明该键已不再活跃
+         */
+        synchronized boolean isIdle() {
+            if (suppressed != 0) return false;
+            if (rule.perSecond <= 0) return true;
+            refill();
+            return tokens >= rule.burst;
+        }
+    }
+
+    /**
+     * 单个级别的限流规则
+     */
+    private static class Rule {
+        final String priority;
+        double perSecond = 0;  // 每秒允许的条数，0表示不限流
+        int burst = 1;         // 令牌桶容量
+        int sampleEvery = 1;   // 每N条保留1条
+        final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+        Bucket overflow;       // 超出MAX_KEYS后共用的状态
+
+        Rule(String priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * 配置变化后重置所有键的状态
+         */
+        void reset() {
+            buckets.clear();
+            overflow = new Bucket(this, false);
+        }
+    }
+
+    private final Rule[] rules = new Rule[LEVELS];
+    private volatile boolean suppressDuplicates = false;
+    private volatile long summaryInterval = DEFAULT_SUMMARY_INTERVAL_MS;
+
+    /**
+     * 设置某一级别的令牌桶限流，每个格式化字符串单独计数
+     *
+     * @param priority  日志级别，如"V"、"W"
+     * @param perSecond 每秒允许的条数，小于等于0表示不限流
+     * @param burst     允许的突发条数
+     * @return 当前实例
+     */
+    public synchronized LogLimiter setRateLimit(String priority, double perSecond, int burst) {
+        Rule rule = ruleOf(priority);
+        rule.perSecond = perSecond;
+        rule.burst = Math.max(1, burst);
+        rule.reset();
+        return this;
+    }
+
+    /**
+     * 设置某一级别的采样，每个格式化字符串单独计数，每<code>every</code>条只保留1条
+     *
+     * @param priority 日志级别
+     * @param every    采样间隔，小于等于1表示不采样
+     * @return 当前实例
+     */
+    public synchronized LogLimiter setSampling(String priority, int every) {
+        Rule rule = ruleOf(priority);
+        rule.sampleEvery = Math.max(1, every);
+        rule.reset();
+        return this;
+    }
+
+    /**
+     * 设置是否抑制连续的重复日志，被抑制的日志会汇总为"message repeated N times"
+     *
+     * @param suppress 是否抑制
+     * @return 当前实例
+     */
+    public LogLimiter setSuppressDuplicates(boolean suppress) {
+        suppressDuplicates = suppress;
+        return this;
+    }
+
+    public boolean isSuppressDuplicates() {
+        return suppressDuplicates;
+    }
+
+    /**
+     * 设置汇总间隔，被限流或连续重复的日志最迟在该时间后输出汇总
+     *
+     * @param intervalMs 汇总间隔（毫秒）
+     * @return 当前实例
+     */
+    public LogLimiter setSummaryInterval(long intervalMs) {
+        summaryInterval = Math.max(1, intervalMs);
+        return this;
+    }
+
+    public long getSummaryInterval() {
+        return summaryInterval;
+    }
+
+    /**
+     * 取出所有被采样或限流丢弃但尚未汇总的条数，同时移除已不再活跃的键
+     *
+     * @param consumer 汇总回调
+     */
+    public void drainSuppressed(SummaryConsumer consumer) {
+        for (Rule rule : rules) {
+            if (rule == null) continue;
+            for (Map.Entry<String, Bucket> e : rule.buckets.entrySet()) {
+                Bucket bucket = e.getValue();
+                long n = bucket.takeSuppressed();
+                if (n > 0) consumer.accept(rule.priority, e.getKey(), n);
+                else if (bucket.isIdle()) rule.buckets.remove(e.getKey(), bucket);
+            }
+            Bucket overflow = rule.overflow;
+            if (overflow != null) {
+                long n = overflow.takeSuppressed();
+                if (n > 0) consumer.accept(rule.priority, null, n);
+            }
+        }
+    }
+
+    /**
+     * 检查一条日志是否允许输出
+     *
+     * @param priority 日志级别
+     * @param key      用于限流计数的键，一般为格式化字符串
+     * @return -1表示丢弃，否则为该键自上次放行以来被采样或限流丢弃的条数
+     */
+    public long acquire(String priority, String key) {
+        Rule rule = rules[LogStream.levelOf(priority)];
+        if (rule == null) return 0;
+
+        if (rule.sampleEvery <= 1 && rule.perSecond <= 0) return 0;
+
+        Bucket bucket = rule.buckets.get(key);
+        if (bucket == null) {
+            // 格式化字符串过多时（如拼接了变量的日志）共用溢出状态，已有的状态保持不变
+            if (rule.buckets.size() >= MAX_KEYS) return rule.overflow.acquire();
+            bucket = rule.buckets.computeIfAbsent(key, k -> new Bucket(rule, true));
+        }
+        return bucket.acquire();
+    }
+
+    private Rule ruleOf(String priority) {
+        int level = LogStream.levelOf(priority);
+        Rule rule = rules[level];
+        if (rule == null) {
+            rule = new Rule(priority);
+            rules[level] = rule;
+        }
+        return rule;
+    }
+}
@@ -0,0 +1,342 @@
+package yangFenTuoZi.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 实时日志流，保存最近的日志记录并推送给订阅者
+ * 每个订阅者拥有独立的有界缓冲区和丢弃计数，慢速订阅者不会阻塞日志写入方
+ */
+public class LogStream implements MemoryBudget.Component {
+    /**
+     * 默认保留的历史记录条数
+     */
+    public static final int DEFAULT_HISTORY = 1024;
+    /**
+     * 默认的订阅者缓冲区大小
+     */
+    public static final int DEFAULT_BUFFER = 256;
+
+    private final Record[] history; // 环形历史缓冲区
+    private int historySize;        // 当前历史记录条数
+    private int historyHead;        // 下一条记录写入的位置
+    private long nextSeq = 1;       // 下一条记录的序号
+    private long historyBytes;      // 历史记录估算占用的字节数
+    private final long streamId = System.currentTimeMillis(); // 流ID，进程重启后序号会从1开始，用于区分
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * 单条日志记录
+     */
+    public static class Record {
+        public final long seq;
+        public final long time;
+        public final String priority;
+        public final String message;
+
+        private Record(long seq, long time, String priority, String message) {
+            this.seq = seq;
+            this.time = time;
+            this.priority = priority;
+            this.message = message;
+        }
+
+        /**
+         * 估算占用的字节数（对象头、字段与字符数据）
+         */
+        private long sizeOf() {
+            return 48 + 2L * message.length();
+        }
+    }
+
+    /**
+     * 订阅者，通过<code>poll(int, long)</code>批量取出日志记录
+     */
+    public static class Subscriber {
+        private final int minLevel;
+        private final int capacity;
+        private final ArrayDeque<Record> buffer;
+        private int limit;               // 当前缓冲区上限，补发的记录取出前会临时超出capacity
+        private long dropped = 0;        // 累计丢弃条数，包括历史中已不存在的记录
+        private long pendingDropped = 0; // 缓冲区末尾之后尚未报告的丢弃条数
+        private long missed = 0;         // 补发时历史中已不存在、尚未报告的条数
+        private long bufferBytes = 0;    // 缓冲区中记录估算占用的字节数
+        private boolean closed = false;
+
+        private Subscriber(int minLevel, int capacity) {
+            this.minLevel = minLevel;
+            this.capacity = capacity;
+            this.limit = capacity;
+            this.buffer = new ArrayDeque<>(capacity);
+        }
+
+        /**
+         * 放入一条记录，缓冲区已满时直接丢弃并计数，不会阻塞<br/>
+         * 发生丢弃后，在丢弃条数被取出前不再接收新记录，保证丢弃的记录总是紧跟在缓冲区末尾
+         */
+        private synchronized void offer(Record record) {
+            if (closed || levelOf(record.priority) < minLevel) return;
+            if (pendingDropped > 0 || buffer.size() >= limit) {
+                dropped++;
+                pendingDropped++;
+                return;
+            }
+            add(record);
+        }
+
+        /**
+         * 放入一条补发的历史记录，不受缓冲区大小限制
+         */
+        private synchronized void replay(Record record) {
+            if (closed || levelOf(record.priority) < minLevel) return;
+            limit++;
+            add(record);
+        }
+
+        /**
+         * 丢弃缓冲区中较新的记录，丢弃的记录仍紧跟在保留的记录之后
+         */
+        private synchronized void trim(int level) {
+            int keep = keepAfterTrim(buffer.size(), level);
+            while (buffer.size() > keep) {
+                bufferBytes -= buffer.pollLast().sizeOf();
+                dropped++;
+                pendingDropped++;
+            }
+            limit = Math.max(capacity, buffer.size());
+        }
+
+        private void add(Record record) {
+            buffer.addLast(record);
+            bufferBytes += record.sizeOf();
+            notifyAll();
+        }
+
+        /**
+         * 批量取出日志记录，缓冲区为空时最多等待<code>timeoutMs</code>毫秒
+         *
+         * @param max       单批最大条数
+         * @param timeoutMs 等待时间（毫秒）
+         * @return 取出的记录，超时或已关闭且取完时为空列表
+         */
+        public synchronized List<Record> poll(int max, long timeoutMs) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            while (buffer.isEmpty() && !closed) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) break;
+                wait(remaining);
+            }
+            List<Record> batch = new ArrayList<>(Math.min(max, buffer.size()));
+            while (batch.size() < max && !buffer.isEmpty()) {
+                Record record = buffer.pollFirst();
+                bufferBytes -= record.sizeOf();
+                batch.add(record);
+            }
+            limit = Math.max(capacity, limit - batch.size());
+            return batch;
+        }
+
+        /**
+         * 获取并清零补发时历史中已不存在的条数，这些记录位于补发的第一条记录之前
+         */
+        public synchronized long takeMissed() {
+            long n = missed;
+            missed = 0;
+            return n;
+        }
+
+        /**
+         * 获取并清零丢弃条数，这些记录位于已取出的最后一条记录之后<br/>
+         * 缓冲区中仍有记录时返回0，应在取完缓冲区后再次调用
+         */
+        public synchronized long takeDropped() {
+            if (!buffer.isEmpty()) return 0;
+            long n = pendingDropped;
+            pendingDropped = 0;
+            return n;
+        }
+
+        /**
+         * 获取累计丢弃条数
+         */
+        public synchronized long getDropped() {
+            return dropped;
+        }
+
+        private synchronized long getUsage() {
+            return bufferBytes + 4L * limit;
+        }
+
+        public synchronized boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * 关闭订阅者，不再接收新记录，缓冲区中剩余的记录仍可被取出
+         */
+        private synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    public LogStream() {
+        this(DEFAULT_HISTORY);
+    }
+
+    /**
+     * @param historyCapacity 保留的历史记录条数，用于订阅者断点续传
+     */
+    public LogStream(int historyCapacity) {
+        history = new Record[Math.max(1, historyCapacity)];
+    }
+
+    /**
+     * 发布一条日志记录
+     *
+     * @param priority 日志级别
+     * @param message  日志信息
+     */
+    public void publish(String priority, String message) {
+        synchronized (this) {
+            Record record = new Record(nextSeq++, System.currentTimeMillis(), priority, message);
+            if (history[historyHead] != null) historyBytes -= history[historyHead].sizeOf();
+            history[historyHead] = record;
+            historyBytes += record.sizeOf();
+            historyHead = (historyHead + 1) % history.length;
+            if (historySize < history.length) historySize++;
+            // 订阅者的offer不会阻塞，在锁内分发以保证与subscribe的补发互不重复
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(record);
+            }
+        }
+    }
+
+    /**
+     * 订阅日志
+     *
+     * @param minPriority 最低日志级别，如"V"、"I"
+     * @param fromSeq     从该序号开始补发历史记录，小于等于0表示只接收新记录，
+     *                    大于下一条序号时视为来自之前的流，从最早的历史记录开始补发
+     * @param capacity    缓冲区大小
+     * @return 订阅者实例
+     */
+    public Subscriber subscribe(String minPriority, long fromSeq, int capacity) {
+        Subscriber subscriber = new Subscriber(levelOf(minPriority), Math.max(1, capacity));
+        synchronized (this) {
+            if (fromSeq > nextSeq) fromSeq = 1;
+            if (fromSeq > 0) {
+                int start = (historyHead - historySize + history.length) % history.length;
+                // 历史记录已被覆盖的部分计为丢弃
+                long oldest = historySize == 0 ? nextSeq : history[start].seq;
+                if (fromSeq < oldest) {
+                    subscriber.dropped += oldest - fromSeq;
+                    subscriber.missed += oldest - fromSeq;
+                }
+                // 补发的记录不占用缓冲区大小，全部保留的历史都能送达
+                for (int i = 0; i < historySize; i++) {
+                    Record record = history[(start + i) % history.length];
+                    if (record.seq >= fromSeq) subscriber.replay(record);
+                }
+            }
+            // 在锁内加入列表，保证补发与新记录之间不遗漏也不重复
+            subscribers.add(subscriber);
+        }
+        return subscriber;
+    }
+
+    /**
+     * 取消订阅
+     *
+     * @param subscriber 订阅者实例
+     */
+    public void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        subscriber.close();
+    }
+
+    /**
+     * 关闭所有订阅者，订阅者仍可取出缓冲区中剩余的记录
+     */
+    public void close() {
+        for (Subscriber subscriber : subscribers) {
+            unsubscribe(subscriber);
+        }
+    }
+
+    /**
+     * 获取估算的内存用量，包括历史记录和所有订阅者的缓冲区
+     */
+    @Override
+    public synchronized long getUsage() {
+        long usage = historyBytes + 4L * history.length;
+        for (Subscriber subscriber : subscribers) {
+            usage += subscriber.getUsage();
+        }
+        return usage;
+    }
+
+    /**
+     * 丢弃较早的历史记录，并丢弃订阅者缓冲区中较新的记录以释放内存<br/>
+     * 订阅者被丢弃的记录计入丢弃条数，客户端可根据序号重新订阅补齐
+     *
+     * @param level 裁剪级别
+     */
+    @Override
+    public synchronized void onTrim(int level) {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.trim(level);
+        }
+
+        int keep = keepAfterTrim(historySize, level);
+        int start = (historyHead - historySize + history.length) % history.length;
+        for (int i = 0; i < historySize - keep; i++) {
+            int index = (start + i) % history.length;
+            historyBytes -= history[index].sizeOf();
+            history[index] = null;
+        }
+        historySize = keep;
+    }
+
+    /**
+     * 计算裁剪后保留的记录条数
+     */
+    private static int keepAfterTrim(int size, int level) {
+        if (level >= MemoryBudget.TRIM_CRITICAL) return 0;
+        if (level >= MemoryBudget.TRIM_LOW) return size / 4;
+        return size / 2;
+    }
+
+    /**
+     * 获取流ID，同一个流内的序号连续，流ID变化说明序号已重新开始
+     */
+    public long getStreamId() {
+        return streamId;
+    }
+
+    /**
+     * 获取最后一条记录的序号
+     */
+    public synchronized long getLastSeq() {
+        return nextSeq - 1;
+    }
+
+    /**
+     * 将日志级别转换为可比较的数值
+     *
+     * @param priority 日志级别
+     * @return 数值，越大越重要
+     */
+    public static int levelOf(String priority) {
+        if (priority == null) return 0;
+        return switch (priority) {
+            case "D" -> 1;
+            case "I" -> 2;
+            case "W" -> 3;
+            case "E" -> 4;
+            default -> 0;
+        };
+    }
+}
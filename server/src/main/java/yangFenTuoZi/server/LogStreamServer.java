@@ -0,0 +1,230 @@
+package yangFenTuoZi.server;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 通过LocalSocket向客户端推送实时日志<br/><br/>
+ * 协议：客户端连接后发送一行<code>subscribe [级别] [起始序号] [流ID]</code>，如<code>subscribe W 120 1760000000000</code><br/>
+ * 服务端先回复一行<code># stream 流ID 最后序号</code>，流ID与客户端提供的不同时（如服务重启）从最早的历史记录开始补发<br/>
+ * 随后持续推送，每行一条记录：<code>序号 时间戳(毫秒) 级别 信息</code>，信息中的换行会被转义为<code>\n</code><br/>
+ * 请求的起始序号已不在历史中时，补发前会推送一行<code># missed 条数</code><br/>
+ * 缓冲区溢出时，在溢出前的最后一条记录之后推送一行<code># dropped 条数</code>，客户端可用最后收到的序号+1重新订阅补齐<br/>
+ * 只有uid在白名单中的客户端可以连接
+ */
+public class LogStreamServer {
+    private static final String TAG = "LogStreamServer";
+    private static final int BATCH_SIZE = 64;             // 单批最大推送条数
+    private static final long POLL_TIMEOUT_MS = 1000;     // 无日志时的等待时间
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000; // 等待订阅请求的超时时间
+    /**
+     * 默认的最大同时连接数
+     */
+    public static final int DEFAULT_MAX_CLIENTS = 4;
+
+    private final String name;
+    private final LogStream stream;
+    private final int bufferSize;
+    private final int[] allowedUids;
+    private final int maxClients;
+    private LocalServerSocket serverSocket;
+    private volatile boolean isStop = false;
+    private final Map<LocalSocket, Thread> clients = new ConcurrentHashMap<>();
+
+    /**
+     * @param name        LocalSocket名称
+     * @param stream      日志流
+     * @param bufferSize  每个客户端的缓冲区大小
+     * @param allowedUids 允许连接的客户端uid
+     * @param maxClients  最大同时连接数
+     */
+    public LogStreamServer(String name, LogStream stream, int bufferSize, int[] allowedUids, int maxClients) {
+        this.name = name;
+        this.stream = stream;
+        this.bufferSize = bufferSize;
+        this.allowedUids = allowedUids;
+        this.maxClients = maxClients;
+    }
+
+    /**
+     * 启动服务，在子线程中接受连接
+     */
+    public void start() throws IOException {
+        serverSocket = new LocalServerSocket(name);
+        Thread thread = new Thread(this::acceptLoop, TAG);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 关闭监听的LocalSocket，不再接受新连接，已连接的客户端不受影响
+     */
+    public void stopAccepting() {
+        isStop = true;
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+        }
+    }
+
+    /**
+     * 停止服务，不再接受新连接，等待所有客户端取完缓冲区中剩余的记录后断开<br/>
+     * 超过等待时间仍未结束的客户端（如未发送订阅请求、不再读取数据）会被强制断开
+     *
+     * @param timeoutMs 等待时间（毫秒）
+     */
+    public void stop(long timeoutMs) {
+        stopAccepting();
+        stream.close();
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            for (Thread client : clients.values()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) break;
+                client.join(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (LocalSocket socket : clients.keySet()) {
+            disconnect(socket);
+        }
+    }
+
+    /**
+     * 强制断开客户端，使阻塞在读写上的线程退出
+     */
+    private static void disconnect(LocalSocket socket) {
+        try {
+            socket.shutdownInput();
+        } catch (IOException ignored) {
+        }
+        try {
+            socket.shutdownOutput();
+        } catch (IOException ignored) {
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void acceptLoop() {
+        while (!isStop) {
+            try {
+                LocalSocket socket = serverSocket.accept();
+                if (!isAllowed(socket)) {
+                    disconnect(socket);
+                    continue;
+                }
+                if (clients.size() >= maxClients) {
+                    Log.w(TAG, "too many clients, rejected");
+                    disconnect(socket);
+                    continue;
+                }
+                Thread thread = new Thread(() -> {
+                    serve(socket);
+                    clients.remove(socket);
+                }, TAG + "-client");
+                thread.setDaemon(true);
+                clients.put(socket, thread);
+                thread.start();
+            } catch (IOException e) {
+                if (!isStop) Log.e(TAG, e.toString());
+                return;
+            }
+        }
+    }
+
+    /**
+     * 检查客户端uid是否在白名单中
+     */
+    private boolean isAllowed(LocalSocket socket) {
+        int uid;
+        try {
+            uid = socket.getPeerCredentials().getUid();
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+            return false;
+        }
+        for (int allowed : allowedUids) {
+            if (allowed == uid) return true;
+        }
+        Log.w(TAG, "rejected client with uid " + uid);
+        return false;
+    }
+
+    private void serve(LocalSocket socket) {
+        LogStream.Subscriber subscriber = null;
+        try (socket) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+
+            // 解析订阅请求：subscribe [级别] [起始序号] [流ID]
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            String line = reader.readLine();
+            if (line == null) return;
+            socket.setSoTimeout(0);
+            String[] parts = line.trim().split("\\s+");
+            if (!"subscribe".equals(parts[0])) {
+                writer.write("# unknown command\n");
+                writer.flush();
+                return;
+            }
+            String priority = parts.length > 1 ? parts[1] : "V";
+            long fromSeq = 0;
+            if (parts.length > 2) {
+                try {
+                    fromSeq = Long.parseLong(parts[2]);
+                    // 序号来自之前的流，重新从头补发
+                    if (parts.length > 3 && fromSeq > 0 && Long.parseLong(parts[3]) != stream.getStreamId())
+                        fromSeq = 1;
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            subscriber = stream.subscribe(priority, fromSeq, bufferSize);
+            writer.write("# stream " + stream.getStreamId() + " " + stream.getLastSeq() + "\n");
+            writer.flush();
+            // 停止接受连接之后才完成的订阅不会再收到新记录
+            if (isStop) stream.unsubscribe(subscriber);
+            long missed = subscriber.takeMissed();
+            if (missed > 0) {
+                writer.write("# missed " + missed + "\n");
+                writer.flush();
+            }
+
+            while (true) {
+                List<LogStream.Record> batch = subscriber.poll(BATCH_SIZE, POLL_TIMEOUT_MS);
+                // 订阅已关闭且缓冲区已取完
+                if (batch.isEmpty() && subscriber.isClosed()) break;
+                for (LogStream.Record record : batch) {
+                    writer.write(record.seq + " " + record.time + " " + record.priority + " "
+                            + record.message.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+                }
+                // 丢弃的记录紧跟在已发送的记录之后
+                long dropped = subscriber.takeDropped();
+                if (dropped > 0) writer.write("# dropped " + dropped + "\n");
+                if (dropped > 0 || !batch.isEmpty()) writer.flush();
+            }
+        } catch (IOException ignored) {
+            // 客户端断开
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (subscriber != null) stream.unsubscribe(subscriber);
+        }
+    }
+}
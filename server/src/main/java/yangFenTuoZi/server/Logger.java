@@ -9,6 +9,8 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Objects;
+import java.util.Timer;
+import java.util.TimerTask;
 
 /**
  * 自定义日志记录器类，支持多级别日志记录和每日日志文件分割
@@ -21,11 +23,19 @@ public class Logger {
     private static final String WARN = "W";
     private static final String ERROR = "E";
 
-    private final boolean disable; // 是否禁用日志功能
-    private String TAG;            // 日志标签
-    private LocalDate lastLogDate; // 最后记录日志的日期
-    private FileWriter fileWriter; // 文件写入器
-    private File logDir;           // 日志文件目录
+    private final boolean disable;       // 是否禁用日志功能
+    private String TAG;                  // 日志标签
+    private LocalDate lastLogDate;       // 最后记录日志的日期
+    private FileWriter fileWriter;       // 文件写入器
+    private File logDir;                 // 日志文件目录
+    private final LogStream stream;      // 实时日志流
+    private boolean closed;              // 是否已关闭，关闭后不再写入文件
+    private volatile LogLimiter limiter; // 日志限流器
+    private String lastMessage;          // 上一条日志信息，用于重复抑制
+    private String lastPriority;         // 上一条日志级别
+    private long repeatCount;            // 上一条日志被连续重复的次数
+    private long repeatStart;            // 开始连续重复的时间
+    private Timer summaryTimer;          // 定期输出被抑制日志的汇总
 
     /**
      * 构造启用日志功能的记录器
@@ -35,6 +45,7 @@ public class Logger {
      */
     public Logger(String TAG, File logDir) {
         disable = false;
+        stream = new LogStream();
         lastLogDate = LocalDate.now();
         try {
             // 检查并创建日志目录
@@ -59,59 +70,130 @@ public class Logger {
      */
     public Logger() {
         disable = true;
+        stream = null;
     }
 
     // 不同日志级别的基础记录方法
     public void v(String message) {
-        writeLog(VERBOSE, message);
+        log(VERBOSE, message, null);
     }
 
     public void d(String message) {
-        writeLog(DEBUG, message);
+        log(DEBUG, message, null);
     }
 
     public void i(String message) {
-        writeLog(INFO, message);
+        log(INFO, message, null);
     }
 
     public void w(String message) {
-        writeLog(WARN, message);
+        log(WARN, message, null);
     }
 
     public void e(String message) {
-        writeLog(ERROR, message);
+        log(ERROR, message, null);
     }
 
     // 支持格式化字符串的日志记录方法
     public void v(String message, Object... args) {
-        v(String.format(message, args));
+        log(VERBOSE, message, args);
     }
 
     public void d(String message, Object... args) {
-        d(String.format(message, args));
+        log(DEBUG, message, args);
     }
 
     public void i(String message, Object... args) {
-        i(String.format(message, args));
+        log(INFO, message, args);
     }
 
     public void w(String message, Object... args) {
-        w(String.format(message, args));
+        log(WARN, message, args);
     }
 
     public void e(String message, Object... args) {
-        e(String.format(message, args));
+        log(ERROR, message, args);
     }
 
     /**
-     * 核心日志写入方法
+     * 经过限流检查后格式化并写入日志，被限流时不会进行格式化
+     *
+     * @param priority 日志级别
+     * @param message  日志信息或格式化字符串
+     * @param args     格式化参数，为null时不进行格式化
+     */
+    private void log(String priority, String message, Object[] args) {
+        if (disable) return;
+
+        LogLimiter limiter = this.limiter;
+        if (limiter != null) {
+            long suppressed = limiter.acquire(priority, message);
+            if (suppressed < 0) return;
+            if (suppressed > 0)
+                writeLog(priority, rateLimitSummary(suppressed, message));
+        }
+        writeLog(priority, args == null ? message : String.format(message, args));
+    }
+
+    /**
+     * 日志写入方法，启用重复抑制时合并连续的重复日志
      *
      * @param priority 日志级别
      * @param message  日志信息
      */
-    private void writeLog(String priority, String message) {
+    private synchronized void writeLog(String priority, String message) {
         if (disable) return;
 
+        LogLimiter limiter = this.limiter;
+        if (limiter != null && limiter.isSuppressDuplicates()) {
+            if (message.equals(lastMessage) && priority.equals(lastPriority)) {
+                // 持续重复时每隔一个汇总间隔输出一次汇总
+                long now = System.currentTimeMillis();
+                if (repeatCount++ == 0) repeatStart = now;
+                else if (now - repeatStart >= limiter.getSummaryInterval()) flushRepeat();
+                return;
+            }
+            flushRepeat();
+            lastMessage = message;
+            lastPriority = priority;
+        }
+        writeRecord(priority, message);
+    }
+
+    /**
+     * 输出被抑制的重复日志的汇总
+     */
+    private void flushRepeat() {
+        if (repeatCount > 0)
+            writeRecord(lastPriority, "message repeated " + repeatCount + " times");
+        repeatCount = 0;
+    }
+
+    /**
+     * 输出被限流日志的汇总，以及超过汇总间隔的重复日志汇总
+     *
+     * @param force 是否忽略汇总间隔，立即输出重复日志汇总
+     */
+    private synchronized void flushSummaries(boolean force) {
+        LogLimiter limiter = this.limiter;
+        if (limiter == null || closed) return;
+
+        limiter.drainSuppressed((priority, key, count) -> writeLog(priority, rateLimitSummary(count, key)));
+        if (force || repeatCount > 0 && System.currentTimeMillis() - repeatStart >= limiter.getSummaryInterval())
+            flushRepeat();
+    }
+
+    private static String rateLimitSummary(long count, String key) {
+        return "message repeated " + count + " times (suppressed): " + (key != null ? key : "(other messages)");
+    }
+
+    /**
+     * 核心日志写入方法
+     *
+     * @param priority 日志级别
+     * @param message  日志信息
+     */
+    private void writeRecord(String priority, String message) {
         try {
             // 输出到Android系统日志
             switch (priority) {
@@ -121,6 +203,8 @@ public class Logger {
                 case WARN -> Log.w(TAG, message);
                 case ERROR -> Log.e(TAG, message);
             }
+            // 推送到实时日志流
+            stream.publish(priority, message);
 
             LocalDate date = LocalDate.now();
             // 检查日期变化，自动切换日志文件
@@ -149,7 +233,7 @@ public class Logger {
      *
      * @param message 要写入的原始信息
      */
-    public void print(String message) {
+    public synchronized void print(String message) {
         if (disable) return;
 
         try {
@@ -171,11 +255,24 @@ public class Logger {
     }
 
     /**
-     * 关闭文件写入器
+     * 关闭文件写入器，关闭后不会再重新打开日志文件
      */
-    public void close() {
+    public synchronized void close() {
         if (disable) return;
 
+        flushSummaries(true);
+        if (summaryTimer != null) {
+            summaryTimer.cancel();
+            summaryTimer = null;
+        }
+        closed = true;
+        closeWriter();
+    }
+
+    /**
+     * 关闭当前的文件写入器
+     */
+    private void closeWriter() {
         try {
             if (fileWriter != null) {
                 fileWriter.close();
@@ -200,14 +297,56 @@ public class Logger {
      * @param file 新的日志文件对象
      */
     private void changeLogFile(File file) throws IOException {
-        if (disable) return;
+        if (disable || closed) return;
 
-        if (fileWriter != null) close();
+        if (fileWriter != null) closeWriter();
         if (!file.exists())
             file.createNewFile();
         fileWriter = new FileWriter(file, true); // 追加模式打开文件
     }
 
+    /**
+     * 设置日志限流器
+     *
+     * @param limiter <code>LogLimiter</code>实例，为null时不限流
+     */
+    public synchronized void setLimiter(LogLimiter limiter) {
+        flushSummaries(true);
+        this.limiter = limiter;
+        if (summaryTimer != null) {
+            summaryTimer.cancel();
+            summaryTimer = null;
+        }
+        if (limiter == null || disable || closed) return;
+
+        long interval = limiter.getSummaryInterval();
+        summaryTimer = new Timer("Logger-summary", true);
+        summaryTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                flushSummaries(false);
+            }
+        }, interval, interval);
+    }
+
+    /**
+     * 获取日志限流器
+     *
+     * @return <code>LogLimiter</code>实例，未设置时为null
+     */
+    public LogLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * 获取实时日志流
+     *
+     * @return <code>LogStream</code>实例，禁用日志时为null
+     */
+    public LogStream getStream() {
+        return stream;
+    }
+
     /**
      * 获取异常堆栈字符串
      *
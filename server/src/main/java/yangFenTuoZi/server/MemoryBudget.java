@@ -0,0 +1,251 @@
+package yangFenTuoZi.server;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * 内存预算管理器<br/><br/>
+ * 缓冲区、缓存等组件通过<code>register</code>登记并声明自己的内存上限，
+ * 管理器定期检查各组件用量、堆内存和系统可用内存，在接近上限（预算的80%）时通知组件进行裁剪<br/>
+ * 裁剪级别使用本类的<code>TRIM_*</code>常量，数值越大需要释放的内存越多
+ */
+public class MemoryBudget {
+    /**
+     * 裁剪级别：接近预算，释放部分可以重建的数据
+     */
+    public static final int TRIM_MODERATE = 5;
+    /**
+     * 裁剪级别：超出预算或内存紧张，释放大部分可以重建的数据
+     */
+    public static final int TRIM_LOW = 10;
+    /**
+     * 裁剪级别：内存严重不足，释放所有可以重建的数据
+     */
+    public static final int TRIM_CRITICAL = 15;
+
+    /**
+     * 默认检查间隔（毫秒）
+     */
+    public static final long DEFAULT_INTERVAL_MS = 10_000;
+
+    // 堆内存使用率阈值
+    private static final float HEAP_LOW = 0.75f;
+    private static final float HEAP_CRITICAL = 0.90f;
+    // 组件用量达到预算的该比例时开始裁剪
+    private static final float SOFT_LIMIT = 0.80f;
+    // 系统可用内存占比阈值
+    private static final float SYSTEM_LOW = 0.10f;
+    private static final float SYSTEM_CRITICAL = 0.05f;
+
+    /**
+     * 可被管理的组件
+     */
+    public interface Component {
+        /**
+         * 获取当前内存用量
+         *
+         * @return 估算的字节数
+         */
+        long getUsage();
+
+        /**
+         * 释放内存
+         *
+         * @param level 裁剪级别，<code>TRIM_MODERATE</code>、<code>TRIM_LOW</code>或<code>TRIM_CRITICAL</code>
+         */
+        void onTrim(int level);
+    }
+
+    private static class Entry {
+        final Component component;
+        final long limit;
+
+        Entry(Component component, long limit) {
+            this.component = component;
+            this.limit = limit;
+        }
+    }
+
+    private final Logger mLogger;
+    private final IntSupplier pressure; // 全局内存压力来源
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private Thread monitor;
+
+    /**
+     * @param logger 日志记录器
+     */
+    public MemoryBudget(Logger logger) {
+        this(logger, MemoryBudget::getPressureLevel);
+    }
+
+    /**
+     * @param logger   日志记录器
+     * @param pressure 返回当前全局裁剪级别，便于测试时替换
+     */
+    MemoryBudget(Logger logger, IntSupplier pressure) {
+        mLogger = logger;
+        this.pressure = pressure;
+    }
+
+    /**
+     * 登记组件
+     *
+     * @param name      组件名称
+     * @param limit     允许使用的最大字节数
+     * @param component 组件实例
+     */
+    public synchronized void register(String name, long limit, Component component) {
+        entries.put(name, new Entry(component, limit));
+    }
+
+    /**
+     * 注销组件
+     *
+     * @param name 组件名称
+     */
+    public synchronized void unregister(String name) {
+        entries.remove(name);
+    }
+
+    /**
+     * 在子线程中开始定期检查
+     *
+     * @param intervalMs 检查间隔（毫秒）
+     */
+    public synchronized void start(long intervalMs) {
+        if (monitor != null) return;
+        monitor = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(intervalMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                check();
+            }
+        }, "MemoryBudget");
+        monitor.setDaemon(true);
+        monitor.start();
+    }
+
+    /**
+     * 停止定期检查
+     */
+    public synchronized void stop() {
+        if (monitor != null) {
+            monitor.interrupt();
+            monitor = null;
+        }
+    }
+
+    /**
+     * 立即检查一次，对接近或超出预算的组件进行裁剪
+     */
+    public void check() {
+        int globalLevel = pressure.getAsInt();
+
+        Map<String, Entry> snapshot;
+        synchronized (this) {
+            snapshot = new LinkedHashMap<>(entries);
+        }
+        for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+            Entry entry = e.getValue();
+            int level = globalLevel;
+            long usage = entry.component.getUsage();
+            // 组件自身接近预算时进行中度裁剪，超出预算时进行低内存裁剪
+            if (usage > entry.limit)
+                level = Math.max(level, TRIM_LOW);
+            else if (usage >= entry.limit * SOFT_LIMIT)
+                level = Math.max(level, TRIM_MODERATE);
+            if (level == 0) continue;
+            try {
+                entry.component.onTrim(level);
+                mLogger.d("trim %s { level = %d, usage = %d -> %d, limit = %d }",
+                        e.getKey(), level, usage, entry.component.getUsage(), entry.limit);
+            } catch (Throwable tr) {
+                mLogger.e("failed to trim %s: %s", e.getKey(), tr.toString());
+            }
+        }
+    }
+
+    /**
+     * 根据堆内存和系统可用内存计算当前的内存压力
+     *
+     * @return 裁剪级别，无压力时为0
+     */
+    public static int getPressureLevel() {
+        Runtime runtime = Runtime.getRuntime();
+        float heap = (float) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+        float available = getSystemAvailableRatio();
+
+        if (heap >= HEAP_CRITICAL || available <= SYSTEM_CRITICAL)
+            return TRIM_CRITICAL;
+        if (heap >= HEAP_LOW || available <= SYSTEM_LOW)
+            return TRIM_LOW;
+        return 0;
+    }
+
+    /**
+     * 读取/proc/meminfo，计算系统可用内存占比
+     *
+     * @return MemAvailable / MemTotal，读取失败时为1
+     */
+    private static float getSystemAvailableRatio() {
+        long total = 0, available = -1;
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/meminfo"))) {
+            String line;
+            while ((line = reader.readLine()) != null && (total == 0 || available < 0)) {
+                if (line.startsWith("MemTotal:")) total = parseKb(line);
+                else if (line.startsWith("MemAvailable:")) available = parseKb(line);
+            }
+        } catch (IOException | NumberFormatException e) {
+            return 1;
+        }
+        if (total <= 0 || available < 0) return 1;
+        return (float) available / total;
+    }
+
+    private static long parseKb(String line) {
+        return Long.parseLong(line.replaceAll("\\D+", ""));
+    }
+
+    /**
+     * 获取各组件当前的内存用量
+     *
+     * @return 组件名称到字节数的映射
+     */
+    public Map<String, Long> getUsages() {
+        Map<String, Entry> snapshot;
+        synchronized (this) {
+            snapshot = new LinkedHashMap<>(entries);
+        }
+        Map<String, Long> usages = new LinkedHashMap<>();
+        for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+            usages.put(e.getKey(), e.getValue().component.getUsage());
+        }
+        return usages;
+    }
+
+    /**
+     * 输出各组件的用量与预算，便于调整内存占用
+     *
+     * @return 格式化后的字符串
+     */
+    public String dump() {
+        Map<String, Entry> snapshot;
+        synchronized (this) {
+            snapshot = new LinkedHashMap<>(entries);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("heap: %d / %d\n", runtime.totalMemory() - runtime.freeMemory(), runtime.maxMemory()));
+        for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+            sb.append(String.format("%s: %d / %d\n", e.getKey(), e.getValue().component.getUsage(), e.getValue().limit));
+        }
+        return sb.toString();
+    }
+}
@@ -17,10 +17,13 @@ import android.system.Os;
 import androidx.annotation.NonNull;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 服务模板类，用于在Android上通过adb/shell..创建一个自己的“服务”
@@ -47,6 +50,18 @@ public abstract class ServerTemplate extends ContextWrapper {
      * 日志记录器
      */
     private final Logger mLogger;
+    /**
+     * 实时日志推送服务，未启用时为null
+     */
+    private LogStreamServer mLogStreamServer;
+    /**
+     * 内存预算管理器
+     */
+    private final MemoryBudget mMemoryBudget;
+    /**
+     * 关闭协调器，保证关闭流程只执行一次
+     */
+    private final ShutdownCoordinator mShutdown;
     /**
      * 主线程的Handler，用于在主线程执行任务
      */
@@ -55,6 +70,10 @@ public abstract class ServerTemplate extends ContextWrapper {
      * 主线程实例， 用于判断当前是否在主线程
      */
     private final Thread mainThread;
+    /**
+     * 关闭流程是否在主线程上执行，此时主线程的消息队列无法被排空
+     */
+    private volatile boolean isFinishingOnMainThread = false;
 
     /**
      * 服务参数
@@ -66,12 +85,28 @@ public abstract class ServerTemplate extends ContextWrapper {
         public final File logDir;
         public final int[] uids;
         public final boolean enableLogger;
+        public final String logStreamName;
+        public final int logStreamBufferSize;
+        public final int[] logStreamUids;
+        public final int logStreamMaxClients;
+        public final long logStreamMemoryLimit;
+        public final long memoryCheckInterval;
+        public final long shutdownTimeout;
+        public final LogLimiter logLimiter;
 
         private Args(Builder builder) {
             serverName = builder.serverName;
             logDir = builder.logDir;
             uids = builder.uids;
             enableLogger = builder.enableLogger;
+            logStreamName = builder.logStreamName;
+            logStreamBufferSize = builder.logStreamBufferSize;
+            logStreamUids = builder.logStreamUids != null ? builder.logStreamUids : builder.uids;
+            logStreamMaxClients = builder.logStreamMaxClients;
+            logStreamMemoryLimit = builder.logStreamMemoryLimit;
+            memoryCheckInterval = builder.memoryCheckInterval;
+            shutdownTimeout = builder.shutdownTimeout;
+            logLimiter = builder.logLimiter;
         }
 
         public static class Builder {
@@ -79,6 +114,32 @@ public abstract class ServerTemplate extends ContextWrapper {
             public File logDir;
             public int[] uids = new int[0];
             public boolean enableLogger = false;
+            /**
+             * 实时日志推送的LocalSocket名称，为null时不启用
+             */
+            public String logStreamName = null;
+            public int logStreamBufferSize = LogStream.DEFAULT_BUFFER;
+            /**
+             * 允许订阅实时日志的客户端uid，为null时与<code>uids</code>相同
+             */
+            public int[] logStreamUids = null;
+            public int logStreamMaxClients = LogStreamServer.DEFAULT_MAX_CLIENTS;
+            /**
+             * 日志历史记录允许占用的最大字节数
+             */
+            public long logStreamMemoryLimit = 1024 * 1024;
+            /**
+             * 内存检查间隔（毫秒），小于等于0时不进行定期检查
+             */
+            public long memoryCheckInterval = MemoryBudget.DEFAULT_INTERVAL_MS;
+            /**
+             * 关闭流程中每一步的超时时间（毫秒）
+             */
+            public long shutdownTimeout = ShutdownCoordinator.DEFAULT_TIMEOUT_MS;
+            /**
+             * 日志限流器，为null时不限流
+             */
+            public LogLimiter logLimiter = null;
 
             public Builder() {
             }
@@ -116,9 +177,46 @@ public abstract class ServerTemplate extends ContextWrapper {
 
         // 如果启用Logger那么就设置为正常的Logger，否则就设置为空模板Logger
         mLogger = mArgs.enableLogger ? new Logger(mArgs.serverName, mArgs.logDir) : new Logger();
+        mLogger.setLimiter(mArgs.logLimiter);
+
+        // 启动实时日志推送
+        if (mArgs.enableLogger && mArgs.logStreamName != null) {
+            mLogStreamServer = new LogStreamServer(mArgs.logStreamName, mLogger.getStream(), mArgs.logStreamBufferSize,
+                    mArgs.logStreamUids, mArgs.logStreamMaxClients);
+            try {
+                mLogStreamServer.start();
+            } catch (IOException e) {
+                mLogger.e("cannot start log stream server: %s", e.toString());
+                mLogStreamServer = null;
+            }
+        }
+
+        // 内存预算管理
+        mMemoryBudget = new MemoryBudget(mLogger);
+        if (mArgs.enableLogger)
+            mMemoryBudget.register("LogStream", mArgs.logStreamMemoryLimit, mLogger.getStream());
+        if (mArgs.memoryCheckInterval > 0)
+            mMemoryBudget.start(mArgs.memoryCheckInterval);
+
+        // 关闭流程：onStop -> 自定义的排空步骤 -> 关闭日志输出
+        mShutdown = new ShutdownCoordinator(mLogger);
+        mShutdown.addStep(ShutdownCoordinator.Phase.STOP_ACCEPTING, "onStop", mArgs.shutdownTimeout, this::onStop);
+        if (mLogStreamServer != null) {
+            // 先关闭监听的LocalSocket，已连接的客户端在刷新阶段取完剩余记录后断开
+            mShutdown.addStep(ShutdownCoordinator.Phase.STOP_ACCEPTING, "log stream accept", mArgs.shutdownTimeout,
+                    mLogStreamServer::stopAccepting);
+            // 留出一半时间强制断开未结束的客户端，保证在步骤超时前返回
+            mShutdown.addStep(ShutdownCoordinator.Phase.FLUSH, "log stream", mArgs.shutdownTimeout,
+                    () -> mLogStreamServer.stop(mArgs.shutdownTimeout / 2));
+        }
+        // 日志记录器最后关闭，子类添加的步骤仍可以写日志
+        mShutdown.setFinalStep("logger", mArgs.shutdownTimeout, () -> {
+            mMemoryBudget.stop();
+            mLogger.close();
+        });
 
         // jvm退出/异常处理
-        Runtime.getRuntime().addShutdownHook(new Thread(this::onStop));
+        Runtime.getRuntime().addShutdownHook(new Thread(mShutdown::run));
         Thread.setDefaultUncaughtExceptionHandler(this::onCrash);
 
         mPackageManager = IPackageManager.Stub.asInterface(ServiceManager.getService("package"));
@@ -131,6 +229,9 @@ public abstract class ServerTemplate extends ContextWrapper {
         mHandler = new Handler();
         mainThread = Thread.currentThread();
 
+        // 关闭时先执行完通过runOnMainThread提交的任务
+        mShutdown.addStep(ShutdownCoordinator.Phase.DRAIN, "main thread", mArgs.shutdownTimeout, this::drainMainThread);
+
         // onStart
         new Thread(this::onStart).start();
 
@@ -188,12 +289,13 @@ public abstract class ServerTemplate extends ContextWrapper {
 
     /**
      * 服务关闭时的回调方法
-     * 子类可以重写此方法以实现自定义的关闭逻辑
+     * 子类可以重写此方法以实现自定义的关闭逻辑，如停止接收新的连接<br/><br/>
+     * 整个进程生命周期内只会被调用一次，需要排空的队列请通过<code>getShutdownCoordinator()</code>添加步骤<br/>
+     * Logger会在此之后才关闭
      */
     public void onStop() {
         // 服务关闭
         mLogger.i("onStop");
-        mLogger.close();
     }
 
     /**
@@ -203,29 +305,43 @@ public abstract class ServerTemplate extends ContextWrapper {
      * @param e 崩溃的异常信息
      */
     public void onCrash(Thread t, Throwable e) {
-        if (isCrashed) System.exit(255);
+        if (isCrashed) finish(255);
         isCrashed = true;
-        new Thread(() -> {
-            if (mLogger != null)
-                mLogger.e("""
-                        ** Program Crashed ! **
-                        at Thread-%s
-                        UID: %d, PID: %d
-                        
-                        %s
-                        """, t.getName(), Os.getuid(), Os.getpid(), Logger.getStackTraceString(e));
-            finish(255);
-        }).start();
+        if (mLogger != null)
+            mLogger.e("""
+                    ** Program Crashed ! **
+                    at Thread-%s
+                    UID: %d, PID: %d
+                    
+                    %s
+                    """, t.getName(), Os.getuid(), Os.getpid(), Logger.getStackTraceString(e));
+        finish(255);
     }
 
     /**
      * 手动退出程序
+     * 关闭流程只会执行一次，重复调用会等待首次调用完成
      *
      * @param status 退出状态码
      */
     public void finish(int status) {
-        onStop();
-        System.exit(status);
+        if (Thread.currentThread() == mainThread) isFinishingOnMainThread = true;
+        mShutdown.shutdown(status);
+    }
+
+    /**
+     * 向主线程投递一个标记并等待其执行，标记之前的任务此时都已执行完毕
+     */
+    private void drainMainThread() {
+        if (isFinishingOnMainThread) return;
+        CountDownLatch marker = new CountDownLatch(1);
+        if (!mHandler.post(marker::countDown)) return;
+        try {
+            // 比步骤超时稍短，超时时由本步骤自行返回，而不是被协调器放弃
+            marker.await(mArgs.shutdownTimeout * 9 / 10, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -247,6 +363,24 @@ public abstract class ServerTemplate extends ContextWrapper {
         return mLogger;
     }
 
+    /**
+     * 获取内存预算管理器实例，自定义的缓冲区、缓存可在此登记
+     *
+     * @return <code>MemoryBudget</code>实例
+     */
+    public MemoryBudget getMemoryBudget() {
+        return mMemoryBudget;
+    }
+
+    /**
+     * 获取关闭协调器实例，可在此添加排空队列等关闭步骤
+     *
+     * @return <code>ShutdownCoordinator</code>实例
+     */
+    public ShutdownCoordinator getShutdownCoordinator() {
+        return mShutdown;
+    }
+
     // Workarounds
 
     private static final Class<?> ACTIVITY_THREAD_CLASS;
@@ -0,0 +1,159 @@
+package yangFenTuoZi.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 关闭协调器，保证关闭流程只执行一次<br/><br/>
+ * 关闭流程按阶段依次执行：停止接收新任务、排空队列、刷新日志输出，
+ * 每个步骤都有独立的超时时间，超时后放弃等待并继续下一步，整个流程的耗时是有上限的<br/>
+ * 通过<code>setFinalStep</code>设置的步骤总是在所有阶段之后最后执行，用于关闭日志记录器等
+ */
+public class ShutdownCoordinator {
+    /**
+     * 默认的单步超时时间（毫秒）
+     */
+    public static final long DEFAULT_TIMEOUT_MS = 3000;
+
+    /**
+     * 关闭阶段，按声明顺序执行
+     */
+    public enum Phase {
+        /**
+         * 停止接收新任务
+         */
+        STOP_ACCEPTING,
+        /**
+         * 排空队列，完成已接收的任务
+         */
+        DRAIN,
+        /**
+         * 刷新并关闭日志输出
+         */
+        FLUSH
+    }
+
+    private static class Step {
+        final Phase phase;
+        final String name;
+        final long timeoutMs;
+        final Runnable action;
+
+        Step(Phase phase, String name, long timeoutMs, Runnable action) {
+            this.phase = phase;
+            this.name = name;
+            this.timeoutMs = timeoutMs;
+            this.action = action;
+        }
+    }
+
+    private final Logger mLogger;
+    private final List<Step> steps = new ArrayList<>();
+    private Step finalStep;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    /**
+     * @param logger 日志记录器
+     */
+    public ShutdownCoordinator(Logger logger) {
+        mLogger = logger;
+    }
+
+    /**
+     * 添加关闭步骤，同一阶段内按添加顺序执行
+     *
+     * @param phase     所属阶段
+     * @param name      步骤名称
+     * @param timeoutMs 超时时间（毫秒）
+     * @param action    需要执行的操作
+     */
+    public synchronized void addStep(Phase phase, String name, long timeoutMs, Runnable action) {
+        if (started.get()) return;
+        int index = steps.size();
+        while (index > 0 && steps.get(index - 1).phase.compareTo(phase) > 0) index--;
+        steps.add(index, new Step(phase, name, timeoutMs, action));
+    }
+
+    /**
+     * 设置最后执行的步骤，在所有阶段的步骤之后执行，重复设置时替换之前的步骤
+     *
+     * @param name      步骤名称
+     * @param timeoutMs 超时时间（毫秒）
+     * @param action    需要执行的操作
+     */
+    public synchronized void setFinalStep(String name, long timeoutMs, Runnable action) {
+        if (started.get()) return;
+        finalStep = new Step(null, name, timeoutMs, action);
+    }
+
+    /**
+     * 执行关闭流程，仅首次调用会真正执行<br/>
+     * 其他线程的调用会等待首次调用完成，等待时间不超过所有步骤超时时间之和
+     */
+    public void run() {
+        List<Step> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(steps);
+            if (finalStep != null) snapshot.add(finalStep);
+        }
+        if (!started.compareAndSet(false, true)) {
+            long total = 0;
+            for (Step step : snapshot) total += step.timeoutMs;
+            try {
+                done.await(total, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
+        try {
+            for (Step step : snapshot) {
+                runStep(step);
+            }
+        } finally {
+            done.countDown();
+        }
+    }
+
+    /**
+     * 执行关闭流程后退出程序
+     *
+     * @param status 退出状态码
+     */
+    public void shutdown(int status) {
+        run();
+        System.exit(status);
+    }
+
+    /**
+     * 关闭流程是否已开始
+     */
+    public boolean isShuttingDown() {
+        return started.get();
+    }
+
+    private void runStep(Step step) {
+        Thread thread = new Thread(() -> {
+            try {
+                step.action.run();
+            } catch (Throwable e) {
+                mLogger.e("shutdown step %s failed: %s", step.name, Logger.getStackTraceString(e));
+            }
+        }, "shutdown-" + step.name);
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            thread.join(step.timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (thread.isAlive())
+            mLogger.w("shutdown step %s timed out after %d ms", step.name, step.timeoutMs);
+    }
+}
@@ -0,0 +1,108 @@
+package yangFenTuoZi.server;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LogLimiterTest {
+
+    @Test
+    public void unconfiguredLevelAlwaysPasses() {
+        LogLimiter limiter = new LogLimiter().setRateLimit("W", 1, 1);
+        for (int i = 0; i < 100; i++) assertEquals(0, limiter.acquire("I", "x"));
+    }
+
+    @Test
+    public void tokenBucketAllowsBurstThenLimits() throws Exception {
+        LogLimiter limiter = new LogLimiter().setRateLimit("W", 20, 2);
+        assertEquals(0, limiter.acquire("W", "hot"));
+        assertEquals(0, limiter.acquire("W", "hot"));
+        assertEquals(-1, limiter.acquire("W", "hot"));
+        assertEquals(-1, limiter.acquire("W", "hot"));
+
+        // 其他格式化字符串单独计数
+        assertEquals(0, limiter.acquire("W", "other"));
+
+        // 令牌回填后放行，并返回期间被限流的条数
+        Thread.sleep(150);
+        assertEquals(2, limiter.acquire("W", "hot"));
+        assertEquals(0, limiter.acquire("W", "hot"));
+    }
+
+    @Test
+    public void samplingKeepsOneInN() {
+        LogLimiter limiter = new LogLimiter().setSampling("V", 4);
+        int passed = 0;
+        for (int i = 0; i < 100; i++) {
+            if (limiter.acquire("V", "v") >= 0) passed++;
+        }
+        assertEquals(25, passed);
+    }
+
+    @Test
+    public void samplingCountsEachKeySeparately() {
+        LogLimiter limiter = new LogLimiter().setSampling("V", 2);
+        int a = 0, b = 0;
+        long reported = 0;
+        for (int i = 0; i < 100; i++) {
+            long n = limiter.acquire("V", "a");
+            if (n >= 0) {
+                a++;
+                reported += n;
+            }
+            n = limiter.acquire("V", "b");
+            if (n >= 0) {
+                b++;
+                reported += n;
+            }
+        }
+        assertEquals(50, a);
+        assertEquals(50, b);
+
+        // 被采样丢弃的条数在放行时或汇总时报告，不会丢失
+        long[] drained = new long[1];
+        limiter.drainSuppressed((priority, key, count) -> drained[0] += count);
+        assertEquals(100, reported + drained[0]);
+    }
+
+    @Test
+    public void drainReportsSuppressedCountsOnce() {
+        LogLimiter limiter = new LogLimiter().setRateLimit("W", 0.001, 1);
+        limiter.acquire("W", "hot");
+        for (int i = 0; i < 5; i++) limiter.acquire("W", "hot");
+
+        List<String> summaries = new ArrayList<>();
+        limiter.drainSuppressed((priority, key, count) -> summaries.add(priority + " " + key + " " + count));
+        assertEquals(List.of("W hot 5"), summaries);
+
+        summaries.clear();
+        limiter.drainSuppressed((priority, key, count) -> summaries.add(priority + " " + key + " " + count));
+        assertEquals(List.of(), summaries);
+    }
+
+    @Test
+    public void keysBeyondCapShareOverflowBucket() {
+        LogLimiter limiter = new LogLimiter().setRateLimit("W", 0.001, 1);
+        // 热点键先耗尽令牌
+        assertEquals(0, limiter.acquire("W", "hot"));
+        assertEquals(-1, limiter.acquire("W", "hot"));
+
+        // 类似 w("x=" + i) 的日志填满键表
+        for (int i = 0; i < 2000; i++) limiter.acquire("W", "x=" + i);
+
+        // 已有的令牌桶不会被重置
+        assertEquals(-1, limiter.acquire("W", "hot"));
+
+        Map<String, Long> summaries = new HashMap<>();
+        limiter.drainSuppressed((priority, key, count) -> summaries.put(key, count));
+        // hot被限流2次；键表已有hot和1023个x=i，其余977条共用溢出令牌桶，放行1条
+        assertEquals(2, summaries.size());
+        assertEquals(2L, (long) summaries.get("hot"));
+        assertEquals(2000 - 1023 - 1, (long) summaries.get(null));
+    }
+}
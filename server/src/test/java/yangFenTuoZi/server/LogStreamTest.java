@@ -0,0 +1,203 @@
+package yangFenTuoZi.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LogStreamTest {
+
+    private static List<Long> seqs(List<LogStream.Record> records) {
+        List<Long> seqs = new ArrayList<>();
+        for (LogStream.Record record : records) seqs.add(record.seq);
+        return seqs;
+    }
+
+    @Test
+    public void resumeFromSequenceReplaysHistory() throws Exception {
+        LogStream stream = new LogStream(16);
+        for (int i = 0; i < 10; i++) stream.publish("I", "m" + i);
+
+        LogStream.Subscriber subscriber = stream.subscribe("V", 7, 16);
+        assertEquals(List.of(7L, 8L, 9L, 10L), seqs(subscriber.poll(16, 0)));
+        assertEquals(0, subscriber.getDropped());
+
+        stream.publish("I", "new");
+        assertEquals(List.of(11L), seqs(subscriber.poll(16, 0)));
+    }
+
+    @Test
+    public void resumeOlderThanHistoryCountsGapAsDropped() throws Exception {
+        LogStream stream = new LogStream(4);
+        for (int i = 0; i < 10; i++) stream.publish("I", "m" + i);
+
+        LogStream.Subscriber subscriber = stream.subscribe("V", 3, 16);
+        assertEquals(List.of(7L, 8L, 9L, 10L), seqs(subscriber.poll(16, 0)));
+        assertEquals(4, subscriber.getDropped());
+        // 历史中已不存在的记录位于补发之前，单独报告
+        assertEquals(4, subscriber.takeMissed());
+        assertEquals(0, subscriber.takeMissed());
+        assertEquals(0, subscriber.takeDropped());
+    }
+
+    @Test
+    public void replayLargerThanBufferIsNotDropped() throws Exception {
+        LogStream stream = new LogStream(16);
+        for (int i = 0; i < 10; i++) stream.publish("I", "m" + i);
+
+        LogStream.Subscriber subscriber = stream.subscribe("V", 1, 2);
+        stream.publish("I", "new1");
+        stream.publish("I", "new2");
+        stream.publish("I", "new3");
+
+        List<Long> received = seqs(subscriber.poll(4, 0));
+        received.addAll(seqs(subscriber.poll(16, 0)));
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L, 12L), received);
+        assertEquals(1, subscriber.takeDropped());
+
+        // 补发取完后缓冲区恢复原来的大小
+        for (int i = 0; i < 3; i++) stream.publish("I", "m");
+        assertEquals(List.of(14L, 15L), seqs(subscriber.poll(16, 0)));
+    }
+
+    @Test
+    public void resumeFromPreviousStreamReplaysFromOldest() throws Exception {
+        // 服务重启后序号从1开始，客户端记录的序号大于当前流的序号
+        LogStream stream = new LogStream(2);
+        for (int i = 0; i < 3; i++) stream.publish("I", "m" + i);
+
+        LogStream.Subscriber subscriber = stream.subscribe("V", 500, 16);
+        assertEquals(List.of(2L, 3L), seqs(subscriber.poll(16, 0)));
+        assertEquals(1, subscriber.getDropped());
+        assertTrue(stream.getStreamId() > 0);
+    }
+
+    @Test
+    public void levelFilterSkipsLowerPriorities() throws Exception {
+        LogStream stream = new LogStream(16);
+        LogStream.Subscriber subscriber = stream.subscribe("W", 0, 16);
+        stream.publish("D", "debug");
+        stream.publish("W", "warn");
+        stream.publish("I", "info");
+        stream.publish("E", "error");
+
+        assertEquals(List.of(2L, 4L), seqs(subscriber.poll(16, 0)));
+        assertEquals(0, subscriber.getDropped());
+    }
+
+    @Test
+    public void fullBufferDropsInsteadOfBlocking() throws Exception {
+        LogStream stream = new LogStream(16);
+        LogStream.Subscriber subscriber = stream.subscribe("V", 0, 2);
+        for (int i = 0; i < 5; i++) stream.publish("I", "m" + i);
+
+        // 缓冲区中还有记录时不报告丢弃，丢弃的记录紧跟在缓冲区末尾之后
+        assertEquals(0, subscriber.takeDropped());
+        assertEquals(List.of(1L), seqs(subscriber.poll(1, 0)));
+        assertEquals(0, subscriber.takeDropped());
+        assertEquals(List.of(2L), seqs(subscriber.poll(16, 0)));
+        assertEquals(3, subscriber.getDropped());
+
+        // 丢弃条数被取出前不再接收新记录，避免在缺口之后插入记录
+        stream.publish("I", "m5");
+        assertTrue(subscriber.poll(16, 0).isEmpty());
+        assertEquals(4, subscriber.takeDropped());
+        stream.publish("I", "m6");
+        assertEquals(List.of(7L), seqs(subscriber.poll(16, 0)));
+
+        // 从最后收到的序号之后重新订阅即可补齐
+        LogStream.Subscriber resumed = stream.subscribe("V", 3, 16);
+        assertEquals(List.of(3L, 4L, 5L, 6L, 7L), seqs(resumed.poll(16, 0)));
+    }
+
+    @Test
+    public void trimDropsOldestAndResumeReportsGap() throws Exception {
+        LogStream stream = new LogStream(8);
+        for (int i = 0; i < 8; i++) stream.publish("I", "m" + i);
+
+        stream.onTrim(MemoryBudget.TRIM_MODERATE);
+        LogStream.Subscriber subscriber = stream.subscribe("V", 1, 16);
+        assertEquals(List.of(5L, 6L, 7L, 8L), seqs(subscriber.poll(16, 0)));
+        assertEquals(4, subscriber.getDropped());
+
+        stream.onTrim(MemoryBudget.TRIM_CRITICAL);
+        LogStream.Subscriber empty = stream.subscribe("V", 1, 16);
+        assertTrue(empty.poll(16, 0).isEmpty());
+        assertEquals(8, empty.getDropped());
+
+        // 裁剪后继续写入，序号连续且补发正常
+        stream.publish("I", "after");
+        LogStream.Subscriber after = stream.subscribe("V", 9, 16);
+        assertEquals(List.of(9L), seqs(after.poll(16, 0)));
+    }
+
+    @Test
+    public void trimShrinksSubscriberBuffers() throws Exception {
+        LogStream stream = new LogStream(16);
+        LogStream.Subscriber subscriber = stream.subscribe("V", 0, 16);
+        for (int i = 0; i < 8; i++) stream.publish("I", "m" + i);
+        long before = stream.getUsage();
+
+        // 保留较早的记录，较新的记录计为丢弃
+        stream.onTrim(MemoryBudget.TRIM_LOW);
+        assertTrue(stream.getUsage() < before);
+        assertEquals(List.of(1L, 2L), seqs(subscriber.poll(16, 0)));
+        assertEquals(6, subscriber.takeDropped());
+
+        stream.publish("I", "after");
+        assertEquals(List.of(9L), seqs(subscriber.poll(16, 0)));
+    }
+
+    @Test
+    public void usageFollowsHistoryAndSubscriberBuffers() throws Exception {
+        LogStream stream = new LogStream(8);
+        long empty = stream.getUsage();
+        for (int i = 0; i < 8; i++) stream.publish("I", "message");
+        long withHistory = stream.getUsage();
+        assertTrue(withHistory > empty);
+
+        LogStream.Subscriber subscriber = stream.subscribe("V", 1, 16);
+        assertTrue(stream.getUsage() > withHistory);
+
+        subscriber.poll(16, 0);
+        stream.onTrim(MemoryBudget.TRIM_CRITICAL);
+        stream.unsubscribe(subscriber);
+        assertEquals(empty, stream.getUsage());
+    }
+
+    @Test
+    public void closedSubscriberCanDrainRemainingRecords() throws Exception {
+        LogStream stream = new LogStream(16);
+        LogStream.Subscriber subscriber = stream.subscribe("V", 0, 16);
+        stream.publish("I", "a");
+        stream.publish("I", "b");
+        stream.close();
+        stream.publish("I", "c");
+
+        assertTrue(subscriber.isClosed());
+        assertEquals(List.of(1L, 2L), seqs(subscriber.poll(16, 1000)));
+        assertTrue(subscriber.poll(16, 1000).isEmpty());
+    }
+
+    @Test
+    public void subscribeDuringPublishNeitherMissesNorDuplicates() throws Exception {
+        int total = 20000;
+        LogStream stream = new LogStream(total);
+        Thread publisher = new Thread(() -> {
+            for (int i = 0; i < total; i++) stream.publish("I", "m");
+        });
+        publisher.start();
+        while (stream.getLastSeq() < total / 4) Thread.yield();
+
+        LogStream.Subscriber subscriber = stream.subscribe("V", 1, total);
+        publisher.join();
+
+        List<Long> received = seqs(subscriber.poll(total + 1, 0));
+        assertEquals(total, received.size());
+        for (int i = 0; i < total; i++) assertEquals(i + 1, (long) received.get(i));
+        assertEquals(0, subscriber.getDropped());
+    }
+}
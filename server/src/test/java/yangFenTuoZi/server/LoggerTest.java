@@ -0,0 +1,67 @@
+package yangFenTuoZi.server;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LoggerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 读取日志文件，去掉时间前缀
+     */
+    private List<String> readLines(File dir) throws Exception {
+        List<String> lines = new ArrayList<>();
+        File[] files = dir.listFiles();
+        for (String line : Files.readAllLines(files[0].toPath())) {
+            lines.add(line.substring(line.indexOf("] ") + 2));
+        }
+        return lines;
+    }
+
+    @Test
+    public void closeReportsPendingSummaries() throws Exception {
+        File dir = folder.newFolder();
+        Logger logger = new Logger("test", dir);
+        logger.setLimiter(new LogLimiter()
+                .setRateLimit("W", 0.001, 1)
+                .setSuppressDuplicates(true));
+
+        for (int i = 0; i < 5; i++) logger.w("hot %d", i);
+        for (int i = 0; i < 3; i++) logger.i("same");
+        logger.close();
+
+        assertEquals(List.of(
+                "[test] [W] hot 0",
+                "[test] [I] same",
+                "[test] [I] message repeated 2 times",
+                "[test] [W] message repeated 4 times (suppressed): hot %d"
+        ), readLines(dir));
+    }
+
+    @Test
+    public void summariesAreWrittenAfterInterval() throws Exception {
+        File dir = folder.newFolder();
+        Logger logger = new Logger("test", dir);
+        logger.setLimiter(new LogLimiter()
+                .setRateLimit("W", 0.001, 1)
+                .setSummaryInterval(100));
+
+        for (int i = 0; i < 3; i++) logger.w("hot");
+        Thread.sleep(500);
+
+        assertEquals(List.of(
+                "[test] [W] hot",
+                "[test] [W] message repeated 2 times (suppressed): hot"
+        ), readLines(dir));
+        logger.close();
+    }
+}
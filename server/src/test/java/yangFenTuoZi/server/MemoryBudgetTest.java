@@ -0,0 +1,118 @@
+package yangFenTuoZi.server;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MemoryBudgetTest {
+
+    /**
+     * 用量固定、记录裁剪级别的组件
+     */
+    private static class FakeComponent implements MemoryBudget.Component {
+        long usage;
+        final List<Integer> levels = new ArrayList<>();
+
+        FakeComponent(long usage) {
+            this.usage = usage;
+        }
+
+        @Override
+        public long getUsage() {
+            return usage;
+        }
+
+        @Override
+        public void onTrim(int level) {
+            levels.add(level);
+        }
+    }
+
+    @Test
+    public void belowSoftLimitIsNotTrimmed() {
+        MemoryBudget budget = new MemoryBudget(new Logger(), () -> 0);
+        FakeComponent component = new FakeComponent(79);
+        budget.register("c", 100, component);
+
+        budget.check();
+        assertEquals(List.of(), component.levels);
+    }
+
+    @Test
+    public void nearLimitTrimsModerately() {
+        MemoryBudget budget = new MemoryBudget(new Logger(), () -> 0);
+        FakeComponent component = new FakeComponent(80);
+        budget.register("c", 100, component);
+
+        budget.check();
+        assertEquals(List.of(MemoryBudget.TRIM_MODERATE), component.levels);
+    }
+
+    @Test
+    public void overLimitTrimsLow() {
+        MemoryBudget budget = new MemoryBudget(new Logger(), () -> 0);
+        FakeComponent component = new FakeComponent(101);
+        budget.register("c", 100, component);
+
+        budget.check();
+        assertEquals(List.of(MemoryBudget.TRIM_LOW), component.levels);
+    }
+
+    @Test
+    public void higherGlobalLevelWins() {
+        AtomicInteger pressure = new AtomicInteger(MemoryBudget.TRIM_CRITICAL);
+        MemoryBudget budget = new MemoryBudget(new Logger(), pressure::get);
+        FakeComponent over = new FakeComponent(101);
+        FakeComponent idle = new FakeComponent(0);
+        budget.register("over", 100, over);
+        budget.register("idle", 100, idle);
+
+        budget.check();
+        assertEquals(List.of(MemoryBudget.TRIM_CRITICAL), over.levels);
+        assertEquals(List.of(MemoryBudget.TRIM_CRITICAL), idle.levels);
+
+        // 全局压力较低时取组件自身的级别
+        pressure.set(MemoryBudget.TRIM_MODERATE);
+        budget.check();
+        assertEquals(List.of(MemoryBudget.TRIM_CRITICAL, MemoryBudget.TRIM_LOW), over.levels);
+        assertEquals(List.of(MemoryBudget.TRIM_CRITICAL, MemoryBudget.TRIM_MODERATE), idle.levels);
+    }
+
+    @Test
+    public void unregisteredComponentIsIgnored() {
+        MemoryBudget budget = new MemoryBudget(new Logger(), () -> 0);
+        FakeComponent component = new FakeComponent(200);
+        budget.register("c", 100, component);
+        budget.unregister("c");
+
+        budget.check();
+        assertEquals(List.of(), component.levels);
+        assertEquals(Map.of(), budget.getUsages());
+    }
+
+    @Test
+    public void failingComponentDoesNotStopOthers() {
+        MemoryBudget budget = new MemoryBudget(new Logger(), () -> 0);
+        budget.register("broken", 100, new MemoryBudget.Component() {
+            @Override
+            public long getUsage() {
+                return 200;
+            }
+
+            @Override
+            public void onTrim(int level) {
+                throw new IllegalStateException("boom");
+            }
+        });
+        FakeComponent component = new FakeComponent(200);
+        budget.register("c", 100, component);
+
+        budget.check();
+        assertEquals(List.of(MemoryBudget.TRIM_LOW), component.levels);
+    }
+}
@@ -0,0 +1,134 @@
+package yangFenTuoZi.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ShutdownCoordinatorTest {
+
+    @Test
+    public void stepsRunInPhaseOrder() {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        ShutdownCoordinator coordinator = new ShutdownCoordinator(new Logger());
+        coordinator.addStep(ShutdownCoordinator.Phase.FLUSH, "flush", 1000, () -> order.add("flush"));
+        coordinator.addStep(ShutdownCoordinator.Phase.DRAIN, "drain", 1000, () -> order.add("drain"));
+        coordinator.addStep(ShutdownCoordinator.Phase.STOP_ACCEPTING, "stop1", 1000, () -> order.add("stop1"));
+        coordinator.addStep(ShutdownCoordinator.Phase.STOP_ACCEPTING, "stop2", 1000, () -> order.add("stop2"));
+
+        coordinator.run();
+        assertEquals(List.of("stop1", "stop2", "drain", "flush"), order);
+    }
+
+    @Test
+    public void finalStepRunsAfterLaterAddedSteps() {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        ShutdownCoordinator coordinator = new ShutdownCoordinator(new Logger());
+        coordinator.setFinalStep("logger", 1000, () -> order.add("logger"));
+        // 子类在最终步骤设置之后添加的步骤
+        coordinator.addStep(ShutdownCoordinator.Phase.FLUSH, "flush", 1000, () -> order.add("flush"));
+        coordinator.addStep(ShutdownCoordinator.Phase.DRAIN, "drain", 1000, () -> order.add("drain"));
+
+        coordinator.run();
+        assertEquals(List.of("drain", "flush", "logger"), order);
+    }
+
+    @Test
+    public void runsExactlyOnceAcrossThreads() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        ShutdownCoordinator coordinator = new ShutdownCoordinator(new Logger());
+        coordinator.addStep(ShutdownCoordinator.Phase.STOP_ACCEPTING, "count", 1000, count::incrementAndGet);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ignored) {
+                }
+                coordinator.run();
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+        coordinator.run();
+
+        assertEquals(1, count.get());
+        assertTrue(coordinator.isShuttingDown());
+    }
+
+    @Test
+    public void secondCallerWaitsForFirstRun() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        ShutdownCoordinator coordinator = new ShutdownCoordinator(new Logger());
+        coordinator.addStep(ShutdownCoordinator.Phase.DRAIN, "slow", 2000, () -> {
+            entered.countDown();
+            sleep(300);
+            finished.countDown();
+        });
+
+        Thread first = new Thread(coordinator::run);
+        first.start();
+        entered.await();
+        coordinator.run();
+        assertEquals(0, finished.getCount());
+        first.join();
+    }
+
+    @Test
+    public void stuckStepIsAbandonedAtDeadline() {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        ShutdownCoordinator coordinator = new ShutdownCoordinator(new Logger());
+        coordinator.addStep(ShutdownCoordinator.Phase.DRAIN, "stuck", 100, () -> sleep(10_000));
+        coordinator.addStep(ShutdownCoordinator.Phase.FLUSH, "flush", 1000, () -> order.add("flush"));
+
+        long start = System.currentTimeMillis();
+        coordinator.run();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue("elapsed " + elapsed, elapsed < 2000);
+        assertEquals(List.of("flush"), order);
+    }
+
+    @Test
+    public void failingStepDoesNotStopLaterSteps() {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        ShutdownCoordinator coordinator = new ShutdownCoordinator(new Logger());
+        coordinator.addStep(ShutdownCoordinator.Phase.STOP_ACCEPTING, "fail", 1000, () -> {
+            throw new IllegalStateException("boom");
+        });
+        coordinator.addStep(ShutdownCoordinator.Phase.FLUSH, "flush", 1000, () -> order.add("flush"));
+
+        coordinator.run();
+        assertEquals(List.of("flush"), order);
+    }
+
+    @Test
+    public void stepsAddedAfterStartAreIgnored() {
+        AtomicInteger count = new AtomicInteger();
+        ShutdownCoordinator coordinator = new ShutdownCoordinator(new Logger());
+        assertFalse(coordinator.isShuttingDown());
+        coordinator.run();
+        coordinator.addStep(ShutdownCoordinator.Phase.FLUSH, "late", 1000, count::incrementAndGet);
+        coordinator.run();
+        assertEquals(0, count.get());
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}